@@ -24,10 +24,16 @@ public class RunnerLifecycleListener implements LifecycleListener {
 			NotifierRunner.getInstance().init();
 		} else if (Lifecycle.AFTER_DESTROY_EVENT.equals(type)) {
 			log.info("Destroy " + RunnerLifecycleListener.class.getName());
-			if (!NotifierRunner.getInstance().destroy()) {
+			final NotifierRunner runner = NotifierRunner.getInstance();
+			final long begin = System.currentTimeMillis();
+			if (!runner.destroy()) {
 				log.error("Destroy unclean");
 			}
-			log.info("Destroyed " + RunnerLifecycleListener.class.getName());
+			log.info("Destroyed " + RunnerLifecycleListener.class.getName() + //
+					" drain=" + (System.currentTimeMillis() - begin) + "ms" + //
+					" delivered=" + runner.getDeliveredCount() + //
+					" failed=" + runner.getFailedCount() + //
+					" dropped=" + runner.getDroppedCount());
 		}
 	}
 }
@@ -181,27 +181,29 @@ public class TomcatLifecycleListener extends GenericNotifier implements Lifecycl
 			return;
 		}
 		final boolean enqueue = NotifierRunner.getInstance().isReady();
-		final String trace = getClass().getName() + " endpoint(" + (enqueue ? "QUEUE" : "BLOCKING") + "): " + //
-				(initOrDestroy ? "Initialized" : "Destroyed") + //
-				" endpoints=" + endpoints + //
-				" connect=" + connectTimeout + "ms" + //
-				" read=" + readTimeout + "ms" + //
-				" notifyURL=" + notifyURL;
-		log.info(trace);
-		//
+		final String type = (initOrDestroy ? "I" : "D");
+		if (log.isDebugEnabled()) {
+			log.debug(getTrace(initOrDestroy, enqueue) + " endpoints=" + endpoints + //
+					" connect=" + connectTimeout + "ms" + //
+					" read=" + readTimeout + "ms");
+		}
 		final StringBuilder sb = new StringBuilder();
 		for (final Entry<String, Endpoint> e : endpoints.entrySet()) {
 			final String serviceName = e.getKey();
 			final Endpoint ep = e.getValue();
+			final long seq = nextSequence();
+			final String idempotencyKey = getIdempotencyKey(seq);
 			final String body;
 			try {
 				sb.setLength(0);
 				sb.append("ts=").append(System.currentTimeMillis()).append('&');
 				sb.append("jvmid=").append(URLEncoder.encode(jmx.getName(), ENCODING)).append('&');
+				sb.append("incarnation=").append(getIncarnation()).append('&');
+				sb.append("seq=").append(seq).append('&');
 				if (customValue != null) {
 					sb.append("custom=").append(URLEncoder.encode(customValue, ENCODING)).append('&');
 				}
-				sb.append("type=").append(initOrDestroy ? "I" : "D").append('&');
+				sb.append("type=").append(type).append('&');
 				sb.append("service=").append(serviceName).append('&');
 				for (final String p : ep.https) {
 					sb.append("https=").append(URLEncoder.encode(p, ENCODING)).append('&');
@@ -216,20 +218,29 @@ public class TomcatLifecycleListener extends GenericNotifier implements Lifecycl
 				sb.append("event=").append("E");
 				body = sb.toString();
 			} catch (UnsupportedEncodingException ex) {
-				log.error(trace + " UnsupportedEncodingException: " + ex);
+				log.error(getTrace(initOrDestroy, enqueue) + " UnsupportedEncodingException: " + ex);
 				return;
 			}
 			//
 			if (enqueue) {
-				NotifierRunner.getInstance().submit(trace, body);
+				NotifierRunner.getInstance().submit("E", type, serviceName, body, idempotencyKey,
+						serviceName);
 			} else {
-				final int ret = notify(body);
+				final int ret = notify(body, idempotencyKey);
 				if (ret < 0) {
-					log.error(trace + " retCode=" + ret + " (error)");
-				} else {
-					log.info(trace + " retCode=" + ret + " (ok)");
+					log.error(getTrace(initOrDestroy, enqueue) + " service=" + serviceName + //
+							" retCode=" + ret + " (error)");
+				} else if (log.isInfoEnabled()) {
+					log.info(getTrace(initOrDestroy, enqueue) + " service=" + serviceName + //
+							" retCode=" + ret + " (ok)");
 				}
 			}
 		}
 	}
+
+	private String getTrace(final boolean initOrDestroy, final boolean enqueue) {
+		return getClass().getName() + " endpoint(" + (enqueue ? "QUEUE" : "BLOCKING") + "): " + //
+				(initOrDestroy ? "Initialized" : "Destroyed") + //
+				" notifyURL=" + notifyURL;
+	}
 }
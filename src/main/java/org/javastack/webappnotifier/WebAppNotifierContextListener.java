@@ -49,43 +49,51 @@ public class WebAppNotifierContextListener extends GenericNotifier implements Se
 		final String service = getServiceName(ctx);
 		final String path = ctx.getContextPath();
 		final String basename = getContextBaseName(ctx);
-		final String trace = getClass().getName() + " context(" + (enqueue ? "QUEUE" : "BLOCKING") + "): " + //
-				(initOrDestroy ? "Initialized" : "Destroyed") + //
-				" path=" + path + //
-				" basename=" + basename + //
-				" service=" + service + //
-				" connect=" + connectTimeout + "ms" + //
-				" read=" + readTimeout + "ms" + //
-				" notifyURL=" + notifyURL;
-		ctx.log(trace);
-		//
+		final String type = (initOrDestroy ? "I" : "D");
+		final long seq = nextSequence();
+		final String idempotencyKey = getIdempotencyKey(seq);
 		final String body;
 		try {
 			final StringBuilder sb = new StringBuilder();
 			sb.append("ts=").append(System.currentTimeMillis()).append('&');
 			sb.append("jvmid=").append(URLEncoder.encode(jmx.getName(), ENCODING)).append('&');
+			sb.append("incarnation=").append(getIncarnation()).append('&');
+			sb.append("seq=").append(seq).append('&');
 			if (customValue != null) {
 				sb.append("custom=").append(URLEncoder.encode(customValue, ENCODING)).append('&');
 			}
-			sb.append("type=").append(initOrDestroy ? "I" : "D").append('&');
+			sb.append("type=").append(type).append('&');
 			sb.append("path=").append(URLEncoder.encode(path, ENCODING)).append('&');
 			sb.append("basename=").append(URLEncoder.encode(basename, ENCODING)).append('&');
 			sb.append("service=").append(URLEncoder.encode(service, ENCODING)).append('&');
 			sb.append("event=").append("C");
 			body = sb.toString();
 		} catch (UnsupportedEncodingException ex) {
-			ctx.log(trace + " UnsupportedEncodingException: " + ex);
+			ctx.log(getTrace(initOrDestroy, enqueue, path, basename, service) + //
+					" UnsupportedEncodingException: " + ex);
 			return;
 		}
 		//
 		if (enqueue) {
-			NotifierRunner.getInstance().submit(trace, body);
+			NotifierRunner.getInstance().submit("C", type, path, body, idempotencyKey,
+					service + '/' + basename);
 		} else {
-			final int ret = notify(body);
-			ctx.log(trace + " retCode=" + ret + (ret < 0 ? " (error)" : " (ok)"));
+			final int ret = notify(body, idempotencyKey);
+			ctx.log(getTrace(initOrDestroy, enqueue, path, basename, service) + //
+					" retCode=" + ret + (ret < 0 ? " (error)" : " (ok)"));
 		}
 	}
 
+	private final String getTrace(final boolean initOrDestroy, final boolean enqueue, final String path,
+			final String basename, final String service) {
+		return getClass().getName() + " context(" + (enqueue ? "QUEUE" : "BLOCKING") + "): " + //
+				(initOrDestroy ? "Initialized" : "Destroyed") + //
+				" path=" + path + //
+				" basename=" + basename + //
+				" service=" + service + //
+				" notifyURL=" + notifyURL;
+	}
+
 	private final String getContextBaseName(final ServletContext ctx) {
 		final String path = ctx.getContextPath();
 		return (path.isEmpty() ? "ROOT" : path.substring(1).replace('/', '#'));
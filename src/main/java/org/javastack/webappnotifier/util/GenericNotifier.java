@@ -8,12 +8,26 @@ import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class GenericNotifier {
 	protected static final RuntimeMXBean jmx = ManagementFactory.getRuntimeMXBean();
 	protected static final String ENCODING = "ISO-8859-1";
 	protected static final String BASE_PROP = "org.javastack.webappnotifier.";
+	private static final String PROP_INCARNATION_KEY = "4b1f3c2a-8d57-4e0b-9a4c-6f2e1d7b5a93";
+	private static final String PROP_SEQUENCE_KEY = "c7e2a9d4-31f6-4b8e-a05d-92b4f8e6c1d7";
+	/**
+	 * Random identifier of this JVM run (shared by all classloaders)
+	 */
+	private static final String INCARNATION = initIncarnation();
+	/**
+	 * Sequence of events of this JVM run (shared by all classloaders)
+	 */
+	private static final AtomicLong SEQUENCE = getSharedCounter(PROP_SEQUENCE_KEY);
 
 	/**
 	 * Constant for: <b>org.javastack.webappnotifier.url</b>
@@ -35,6 +49,14 @@ public class GenericNotifier {
 	 * Constant for: <b>org.javastack.webappnotifier.customValue</b>
 	 */
 	public static final String CUSTOM_PROP = BASE_PROP + "customValue";
+	/**
+	 * Constant for: <b>org.javastack.webappnotifier.lanes</b>
+	 */
+	public static final String LANES_PROP = BASE_PROP + "lanes";
+	/**
+	 * Constant for: <b>org.javastack.webappnotifier.prewarm</b>
+	 */
+	public static final String PREWARM_PROP = BASE_PROP + "prewarm";
 
 	/**
 	 * Default connect timeout: 5sec
@@ -48,6 +70,14 @@ public class GenericNotifier {
 	 * Default retry count: 2 retries
 	 */
 	public static final int DEF_RETRY_COUNT = 2;
+	/**
+	 * Default delivery lanes (parallelism of runner): 4
+	 */
+	public static final int DEF_LANES = 4;
+	/**
+	 * Default prewarm (runner): false
+	 */
+	public static final boolean DEF_PREWARM = false;
 
 	/**
 	 * URL to invoke for notification
@@ -78,6 +108,60 @@ public class GenericNotifier {
 		customValue = System.getProperty(CUSTOM_PROP, "");
 	}
 
+	private static final String initIncarnation() {
+		final Properties props = System.getProperties();
+		final Object value = props.get(PROP_INCARNATION_KEY);
+		if (value != null) {
+			return (String) value;
+		}
+		props.putIfAbsent(PROP_INCARNATION_KEY, UUID.randomUUID().toString());
+		return (String) props.get(PROP_INCARNATION_KEY);
+	}
+
+	/**
+	 * Counter shared by all classloaders (resolve once, in static final)
+	 * 
+	 * @param key system properties key
+	 * @return shared counter
+	 */
+	protected static final AtomicLong getSharedCounter(final String key) {
+		final Properties props = System.getProperties();
+		final Object value = props.get(key);
+		if (value != null) {
+			return (AtomicLong) value;
+		}
+		props.putIfAbsent(key, new AtomicLong());
+		return (AtomicLong) props.get(key);
+	}
+
+	/**
+	 * Random identifier of this JVM run (shared by all classloaders)
+	 * 
+	 * @return incarnation id
+	 */
+	protected static final String getIncarnation() {
+		return INCARNATION;
+	}
+
+	/**
+	 * Monotonic sequence number for events of this JVM run (shared by all classloaders)
+	 * 
+	 * @return next sequence number
+	 */
+	protected static final long nextSequence() {
+		return SEQUENCE.incrementAndGet();
+	}
+
+	/**
+	 * Idempotency key for a sequence number of this JVM run
+	 * 
+	 * @param seq sequence number
+	 * @return key like: incarnation-seq
+	 */
+	protected static final String getIdempotencyKey(final long seq) {
+		return INCARNATION + "-" + seq;
+	}
+
 	protected final int getRandomSleep(final boolean needSleep, final int min, final int max) {
 		return (needSleep ? Math.max(min, (int) (Math.random() * 1000000) % max) : 0);
 	}
@@ -92,7 +176,7 @@ public class GenericNotifier {
 		}
 	}
 
-	protected final int notify(final String body) {
+	protected final int notify(final String body, final String idempotencyKey) {
 		if (notifyURL == null) {
 			return 0;
 		}
@@ -103,7 +187,8 @@ public class GenericNotifier {
 			try {
 				final URL url = new URL(notifyURL);
 				retCode = request(url, connectTimeout, readTimeout, "POST",
-						"application/x-www-form-urlencoded", new ByteArrayInputStream(buf), buf.length);
+						"application/x-www-form-urlencoded", new ByteArrayInputStream(buf), buf.length,
+						idempotencyKey);
 				// Dont retry: Info (1xx), OK (2xx), Redir (3xx), Client Error (4xx)
 				if ((retCode >= 100) && (retCode <= 399)) {
 					return (retCode / 100);
@@ -128,9 +213,28 @@ public class GenericNotifier {
 		return retCode;
 	}
 
+	/**
+	 * Resolve host of notifyURL and send an OPTIONS request, leaving the connection in keep-alive cache
+	 * and HTTP/TLS classes loaded
+	 * 
+	 * @return HTTP response code or negative on error
+	 */
+	protected final int prewarm() {
+		if (notifyURL == null) {
+			return 0;
+		}
+		try {
+			final URL url = new URL(notifyURL);
+			InetAddress.getAllByName(url.getHost());
+			return request(url, connectTimeout, readTimeout, "OPTIONS", null, null, 0, null);
+		} catch (IOException e) {
+			return -2;
+		}
+	}
+
 	protected final int request(final URL url, final int connectTimeout, final int readTimeout,
 			final String method, final String contentType, final InputStream doOutput,
-			final int contentLength) throws IOException {
+			final int contentLength, final String idempotencyKey) throws IOException {
 		HttpURLConnection conn = null;
 		InputStream urlIs = null;
 		OutputStream urlOs = null;
@@ -144,6 +248,9 @@ public class GenericNotifier {
 				conn.setRequestProperty("Content-Type", contentType);
 				conn.setRequestProperty("Cache-Control", "no-cache; max-age=0");
 				conn.setRequestProperty("Pragma", "no-cache");
+				if (idempotencyKey != null) {
+					conn.setRequestProperty("Idempotency-Key", idempotencyKey);
+				}
 				conn.setDoOutput(true);
 				if (contentLength > 0)
 					conn.setFixedLengthStreamingMode(contentLength);
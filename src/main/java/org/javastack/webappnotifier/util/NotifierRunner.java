@@ -1,16 +1,55 @@
 package org.javastack.webappnotifier.util;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 
-public class NotifierRunner extends GenericNotifier implements Runnable {
+public class NotifierRunner extends GenericNotifier {
+	private static final Log log = LogFactory.getLog(NotifierRunner.class);
 	private static final NotifierRunner singleton = new NotifierRunner();
 	private static final String PROP_QUEUE_KEY = "9fd4e95e-2195-4847-a450-59ad858ce8d0";
+	private static final String PROP_DELIVERED_KEY = "2d8b6f1e-57a3-4c09-b6e4-0a9c3f7d2e58";
+	private static final String PROP_FAILED_KEY = "e61a4c9b-0f37-4d82-8b5e-c3d7a2f9146b";
+	private static final String PROP_DROPPED_KEY = "5b3e9d70-c2a8-4f16-9e4d-81f6b0a5c7e3";
 	private static final int SHUTDOWN_TIMEOUT = 10000;
-	private Thread runner = null;
+	private static final int QUEUE_SIZE = 1024;
+	private static final int SUMMARY_INTERVAL = 60000;
+	/**
+	 * Below idle timeout of JDK keep-alive cache (5sec)
+	 */
+	private static final int PREWARM_INTERVAL = 4000;
+	private static final int PREWARM_TIMEOUT = 60000;
+	/*
+	 * Slots of queued events (only JDK types in shared queue, to work across classloaders)
+	 */
+	private static final int SLOT_EVENT = 0;
+	private static final int SLOT_TYPE = 1;
+	private static final int SLOT_NAME = 2;
+	private static final int SLOT_BODY = 3;
+	private static final int SLOT_IDEMPOTENCY_KEY = 4;
+	private static final int SLOT_PARTITION_KEY = 5;
+	private static final int SLOTS = 6;
+	/*
+	 * Outcome counters (shared by all classloaders, like the queue)
+	 */
+	private static final AtomicLong delivered = getSharedCounter(PROP_DELIVERED_KEY);
+	private static final AtomicLong failed = getSharedCounter(PROP_FAILED_KEY);
+	private static final AtomicLong dropped = getSharedCounter(PROP_DROPPED_KEY);
+	private Dispatcher dispatcher = null;
 
 	private NotifierRunner() {
 		super();
@@ -20,28 +59,13 @@ public class NotifierRunner extends GenericNotifier implements Runnable {
 		return singleton;
 	}
 
-	@Override
-	public void run() {
-		final Log log = LogFactory.getLog(NotifierRunner.class);
-		Queue<String[]> queue = null;
-		while ((queue = getQueue()) != null) {
-			final String[] e = queue.poll();
-			try {
-				if (e != null) {
-					final String trace = e[0];
-					final String body = e[1];
-					final int ret = notify(body);
-					if (ret < 0) {
-						log.error(trace + " retCode=" + ret + " (error)");
-					} else {
-						log.info(trace + " retCode=" + ret + " (ok)");
-					}
-				} else {
-					Thread.sleep(100);
-				}
-			} catch (Exception ex) {
-			}
-		}
+	private static String describe(final String[] e) {
+		return NotifierRunner.class.getName() + //
+				" event=" + e[SLOT_EVENT] + //
+				" type=" + e[SLOT_TYPE] + //
+				" name=" + e[SLOT_NAME] + //
+				" partition=" + e[SLOT_PARTITION_KEY] + //
+				" key=" + e[SLOT_IDEMPOTENCY_KEY];
 	}
 
 	private Queue<String[]> getQueue() {
@@ -50,7 +74,7 @@ public class NotifierRunner extends GenericNotifier implements Runnable {
 		return queue;
 	}
 
-	private void setQueue(final Queue<String> queue) {
+	private void setQueue(final Queue<String[]> queue) {
 		if (queue != null) {
 			System.getProperties().put(PROP_QUEUE_KEY, queue);
 		} else {
@@ -61,11 +85,30 @@ public class NotifierRunner extends GenericNotifier implements Runnable {
 	public void init() {
 		synchronized (System.class) {
 			if (!isReady()) {
-				setQueue(new ArrayBlockingQueue<String>(1024));
-				runner = new Thread(this, NotifierRunner.class.getSimpleName());
+				final Queue<String[]> queue = new ArrayBlockingQueue<String[]>(QUEUE_SIZE);
+				final AtomicInteger pending = new AtomicInteger();
+				final Lane[] lanes = new Lane[Math.max(Integer.getInteger(LANES_PROP, DEF_LANES), 1)];
+				for (int i = 0; i < lanes.length; i++) {
+					lanes[i] = new Lane(pending);
+					final Thread t = new Thread(lanes[i], //
+							NotifierRunner.class.getSimpleName() + "-lane-" + i);
+					t.setDaemon(true);
+					t.setPriority(Thread.NORM_PRIORITY);
+					t.start();
+				}
+				dispatcher = new Dispatcher(queue, lanes, pending);
+				final Thread runner = new Thread(dispatcher, NotifierRunner.class.getSimpleName());
 				runner.setDaemon(true);
 				runner.setPriority(Thread.NORM_PRIORITY);
 				runner.start();
+				setQueue(queue);
+				if (Boolean.parseBoolean(System.getProperty(PREWARM_PROP, String.valueOf(DEF_PREWARM)))) {
+					final Thread t = new Thread(new Prewarm(dispatcher), //
+							NotifierRunner.class.getSimpleName() + "-prewarm");
+					t.setDaemon(true);
+					t.setPriority(Thread.NORM_PRIORITY);
+					t.start();
+				}
 			}
 		}
 	}
@@ -77,15 +120,59 @@ public class NotifierRunner extends GenericNotifier implements Runnable {
 		}
 	}
 
-	public void submit(final String trace, final String task) {
+	/**
+	 * Submit event for delivery
+	 *
+	 * @param event "C" for Context, "E" for EndPoint
+	 * @param type "I" for Initialized, "D" for Destroyed
+	 * @param name context path or service name (for logging)
+	 * @param task body of notification
+	 * @param idempotencyKey value for Idempotency-Key header
+	 * @param partitionKey events with same key are delivered in order (null for first lane)
+	 */
+	public void submit(final String event, final String type, final String name, final String task,
+			final String idempotencyKey, final String partitionKey) {
+		final String[] e = new String[SLOTS];
+		e[SLOT_EVENT] = event;
+		e[SLOT_TYPE] = type;
+		e[SLOT_NAME] = name;
+		e[SLOT_BODY] = task;
+		e[SLOT_IDEMPOTENCY_KEY] = idempotencyKey;
+		e[SLOT_PARTITION_KEY] = partitionKey;
 		synchronized (System.class) {
 			final Queue<String[]> queue = getQueue();
 			if (queue != null) {
-				queue.offer(new String[] { trace, task });
+				if (!queue.offer(e)) {
+					dropped.incrementAndGet();
+					log.error(describe(e) + " (dropped: queue full)");
+				} else if (log.isDebugEnabled()) {
+					log.debug(describe(e) + " (queued)");
+				}
 			}
 		}
 	}
 
+	/**
+	 * @return number of events delivered (ok), in all classloaders
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return number of events failed after all retries, in all classloaders
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return number of events dropped (queue or lane full), in all classloaders
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
 	public boolean destroy() {
 		synchronized (System.class) {
 			final Queue<String[]> queue = getQueue();
@@ -96,18 +183,248 @@ public class NotifierRunner extends GenericNotifier implements Runnable {
 				return awaitTermination(queue);
 			} finally {
 				setQueue(null);
+				if (dispatcher != null) {
+					dispatcher.stop();
+					dispatcher = null;
+				}
 			}
 		}
 	}
 
 	private boolean awaitTermination(final Queue<String[]> queue) {
 		final long expire = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
-		while (!queue.isEmpty() && (System.currentTimeMillis() < expire)) {
+		while (!isDrained(queue) && (System.currentTimeMillis() < expire)) {
 			try {
 				Thread.sleep(100);
 			} catch (InterruptedException e1) {
 			}
 		}
-		return queue.isEmpty();
+		return isDrained(queue);
+	}
+
+	private boolean isDrained(final Queue<String[]> queue) {
+		return queue.isEmpty() && ((dispatcher == null) || (dispatcher.pending.get() == 0));
+	}
+
+	/**
+	 * Warm up DNS, connection and HTTP/TLS stack before first notifications, and keep one connection per
+	 * lane alive until first event (or timeout)
+	 */
+	private final class Prewarm implements Runnable, Callable<Integer> {
+		private final Dispatcher dispatcher;
+
+		private Prewarm(final Dispatcher dispatcher) {
+			this.dispatcher = dispatcher;
+		}
+
+		@Override
+		public Integer call() {
+			return prewarm();
+		}
+
+		@Override
+		public void run() {
+			if (notifyURL == null) {
+				return;
+			}
+			// Concurrent requests, so each lane finds its own connection in keep-alive cache
+			final int count = dispatcher.lanes.length;
+			final List<Prewarm> tasks = Collections.nCopies(count, this);
+			final ExecutorService executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, NotifierRunner.class.getSimpleName() + "-prewarm-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			try {
+				final long begin = System.currentTimeMillis();
+				final int ret = warmUp(executor, tasks);
+				log.info("Prewarm notifyURL=" + notifyURL + " connections=" + count + " retCode=" + ret
+						+ " time=" + (System.currentTimeMillis() - begin) + "ms");
+				final long expire = begin + PREWARM_TIMEOUT;
+				while (true) {
+					doSleep(PREWARM_INTERVAL);
+					if (!dispatcher.idle || dispatcher.stopped || (System.currentTimeMillis() > expire)
+							|| Thread.currentThread().isInterrupted()) {
+						break;
+					}
+					final int r = warmUp(executor, tasks);
+					if (log.isDebugEnabled()) {
+						log.debug("Prewarm keep-alive notifyURL=" + notifyURL + " connections=" + count
+								+ " retCode=" + r);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		/**
+		 * @return worst retCode of all connections
+		 */
+		private int warmUp(final ExecutorService executor, final List<Prewarm> tasks) {
+			int ret = Integer.MAX_VALUE;
+			try {
+				for (final Future<Integer> f : executor.invokeAll(tasks)) {
+					ret = Math.min(ret, f.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -2;
+			} catch (ExecutionException e) {
+				return -2;
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Dispatch events from shared queue to lanes (by partition key)
+	 */
+	private final class Dispatcher implements Runnable {
+		private final Queue<String[]> queue;
+		private final Lane[] lanes;
+		/**
+		 * Events dispatched to lanes and not yet delivered
+		 */
+		private final AtomicInteger pending;
+		private volatile boolean stopped = false;
+		/**
+		 * No event seen yet (used by prewarm)
+		 */
+		private volatile boolean idle = true;
+		/*
+		 * Last summary (only used by dispatcher thread)
+		 */
+		private long lastSummaryTime = System.currentTimeMillis();
+		private long lastDelivered = delivered.get();
+		private long lastFailed = failed.get();
+		private long lastDropped = dropped.get();
+
+		private Dispatcher(final Queue<String[]> queue, final Lane[] lanes, final AtomicInteger pending) {
+			this.queue = queue;
+			this.lanes = lanes;
+			this.pending = pending;
+		}
+
+		private void stop() {
+			stopped = true;
+			for (final Lane lane : lanes) {
+				lane.stopped = true;
+			}
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				logSummary();
+				// Only consumer of shared queue: count as pending before remove (see isDrained)
+				final String[] e = queue.peek();
+				if (e == null) {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException ex) {
+					}
+					continue;
+				}
+				idle = false;
+				pending.incrementAndGet();
+				queue.poll();
+				boolean dispatched = false;
+				try {
+					if (e.length != SLOTS) {
+						dropped.incrementAndGet();
+						log.error(NotifierRunner.class.getName() + //
+								" (dropped: invalid event, slots=" + e.length + ")");
+					} else if (lanes[getLane(e[SLOT_PARTITION_KEY])].queue.offer(e)) {
+						dispatched = true;
+					} else {
+						dropped.incrementAndGet();
+						log.error(describe(e) + " (dropped: lane full)");
+					}
+				} catch (Exception ex) {
+					dropped.incrementAndGet();
+					log.error(NotifierRunner.class.getName() + " (dropped: " + ex + ")");
+				} finally {
+					if (!dispatched) {
+						pending.decrementAndGet();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Log an aggregate line of delivery outcomes (at most once per interval)
+		 */
+		private void logSummary() {
+			final long now = System.currentTimeMillis();
+			if ((now - lastSummaryTime) < SUMMARY_INTERVAL) {
+				return;
+			}
+			final long ok = delivered.get(), error = failed.get(), drop = dropped.get();
+			if (((ok != lastDelivered) || (error != lastFailed) || (drop != lastDropped))
+					&& log.isInfoEnabled()) {
+				log.info("Notified in last " + ((now - lastSummaryTime) / 1000) + "s:" + //
+						" ok=" + (ok - lastDelivered) + //
+						" error=" + (error - lastFailed) + //
+						" dropped=" + (drop - lastDropped));
+			}
+			lastSummaryTime = now;
+			lastDelivered = ok;
+			lastFailed = error;
+			lastDropped = drop;
+		}
+
+		private int getLane(final String partitionKey) {
+			if (partitionKey == null) {
+				return 0;
+			}
+			return ((partitionKey.hashCode() & Integer.MAX_VALUE) % lanes.length);
+		}
+	}
+
+	/**
+	 * Deliver events of a partition in FIFO order
+	 */
+	private final class Lane implements Runnable {
+		private final BlockingQueue<String[]> queue = new ArrayBlockingQueue<String[]>(QUEUE_SIZE);
+		private final AtomicInteger pending;
+		private volatile boolean stopped = false;
+
+		private Lane(final AtomicInteger pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				try {
+					final String[] e = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (e != null) {
+						try {
+							final int ret = NotifierRunner.this.notify(e[SLOT_BODY], e[SLOT_IDEMPOTENCY_KEY]);
+							if (ret < 0) {
+								failed.incrementAndGet();
+								log.error(describe(e) + " retCode=" + ret + " (error)");
+							} else {
+								delivered.incrementAndGet();
+								if (log.isDebugEnabled()) {
+									log.debug(describe(e) + " retCode=" + ret + " (ok)");
+								}
+							}
+						} catch (Exception ex) {
+							// Like ClassCastException for a non HTTP notifyURL
+							failed.incrementAndGet();
+							log.error(describe(e) + " (error: " + ex + ")");
+						} finally {
+							pending.decrementAndGet();
+						}
+					}
+				} catch (Exception ex) {
+				}
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,337 @@
+package org.javastack.webappnotifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.javastack.webappnotifier.util.GenericNotifier;
+import org.javastack.webappnotifier.util.NotifierRunner;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Deploy storm: N contexts deployed, redeployed and undeployed from M threads against an in-process
+ * {@link StubReceiver}, through {@link RunnerLifecycleListener}, {@link TomcatLifecycleListener} and
+ * {@link WebAppNotifierContextListener}.
+ * <p>
+ * Load harness (real sockets, platform MBeans, wall-clock limits), only run on demand:
+ *
+ * <pre>
+ * mvn test -Dstorm=true
+ * mvn test -Dstorm=true -Dstorm.contexts=500 -Dstorm.threads=16 -Dstorm.latency=20 \
+ *     -Dstorm.errorRate=0.01 -Dstorm.throttleRate=0.05
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "storm", matches = "true")
+public class DeployStormTest {
+	private static final String KEY_CACHE = WebAppNotifierContextListener.class.getName()
+			+ ".serviceName.cache";
+	private static final String CONNECTOR_CLASS = "org.apache.catalina.mbeans.ConnectorMBean";
+	private static final String[] SERVICES = { "Catalina", "Catalina2" };
+	private static final int CONTEXTS = Integer.getInteger("storm.contexts", 250);
+	private static final int THREADS = Integer.getInteger("storm.threads", 8);
+	private static final int LATENCY = Integer.getInteger("storm.latency", 5);
+	/**
+	 * HTTP 500 are retried after random sleeps (up to 3sec), which can push drain over its timeout; only
+	 * enabled on demand
+	 */
+	private static final double ERROR_RATE = Double.parseDouble(System.getProperty("storm.errorRate", "0"));
+	private static final double THROTTLE_RATE = Double
+			.parseDouble(System.getProperty("storm.throttleRate", "0.02"));
+	/**
+	 * Same as shutdown timeout of NotifierRunner
+	 */
+	private static final long DRAIN_TIMEOUT = 10000;
+
+	private static StubReceiver receiver;
+	private static final List<ObjectName> mbeans = new ArrayList<ObjectName>();
+
+	@BeforeAll
+	public static void setUp() throws Exception {
+		receiver = new StubReceiver(LATENCY, ERROR_RATE, THROTTLE_RATE);
+		receiver.start();
+		// Must be set before first use of notifiers (read in constructor)
+		System.setProperty(GenericNotifier.URL_PROP, receiver.getURL());
+		final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		int port = 8080;
+		for (final String svc : SERVICES) {
+			register(mbs, svc + ":type=Service", "org.apache.catalina.core.StandardService", "name", svc);
+			register(mbs, svc + ":type=Engine", "org.apache.catalina.core.StandardEngine", //
+					"jvmRoute", "jvm1");
+			register(mbs, svc + ":type=Connector,port=" + (port++), CONNECTOR_CLASS, //
+					"protocol", "HTTP/1.1", "scheme", "http");
+			register(mbs, svc + ":type=Connector,port=" + (port++), CONNECTOR_CLASS, //
+					"protocol", "AJP/1.3", "scheme", "http");
+		}
+	}
+
+	@AfterAll
+	public static void tearDown() throws Exception {
+		final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		for (final ObjectName name : mbeans) {
+			mbs.unregisterMBean(name);
+		}
+		receiver.stop();
+		System.clearProperty(GenericNotifier.URL_PROP);
+	}
+
+	@Test
+	public void deployStorm() throws Exception {
+		final NotifierRunner runner = NotifierRunner.getInstance();
+		final long delivered0 = runner.getDeliveredCount();
+		final long failed0 = runner.getFailedCount();
+		final long dropped0 = runner.getDroppedCount();
+		final RunnerLifecycleListener runnerListener = new RunnerLifecycleListener();
+		final TomcatLifecycleListener tomcatListener = new TomcatLifecycleListener();
+		final List<ServletContext> contexts = new ArrayList<ServletContext>();
+		final List<WebAppNotifierContextListener> listeners = new ArrayList<WebAppNotifierContextListener>();
+		for (int i = 0; i < CONTEXTS; i++) {
+			contexts.add(newServletContext("/app" + i, SERVICES[i % SERVICES.length]));
+			listeners.add(new WebAppNotifierContextListener());
+		}
+		//
+		runnerListener.lifecycleEvent(newLifecycleEvent(Lifecycle.BEFORE_INIT_EVENT));
+		assertTrue(runner.isReady());
+		tomcatListener.lifecycleEvent(newLifecycleEvent(Lifecycle.BEFORE_START_EVENT));
+		final long begin = System.currentTimeMillis();
+		// Deploy and redeploy
+		runStorm(contexts, listeners, true);
+		// Undeploy
+		runStorm(contexts, listeners, false);
+		tomcatListener.lifecycleEvent(newLifecycleEvent(Lifecycle.BEFORE_DESTROY_EVENT));
+		final long drainBegin = System.currentTimeMillis();
+		runnerListener.lifecycleEvent(newLifecycleEvent(Lifecycle.AFTER_DESTROY_EVENT));
+		final long end = System.currentTimeMillis();
+		assertFalse(runner.isReady());
+		//
+		final long submitted = (CONTEXTS * 4) + (SERVICES.length * 2);
+		final long delivered = runner.getDeliveredCount() - delivered0;
+		final long failed = runner.getFailedCount() - failed0;
+		final long dropped = runner.getDroppedCount() - dropped0;
+		final List<StubReceiver.Accepted> accepted = receiver.getAccepted();
+		report(submitted, delivered, failed, dropped, accepted, end - begin, end - drainBegin);
+		// Every event is accounted for, nothing left behind after drain
+		assertTrue((end - drainBegin) < DRAIN_TIMEOUT, "drain timeout");
+		assertEquals(submitted, delivered + failed + dropped, "submitted != delivered + failed + dropped");
+		assertEquals(delivered, accepted.size(), "delivered != accepted by receiver");
+		assertTrue(failed <= receiver.getErrors() + receiver.getThrottled(), "failed without server error");
+		// No duplicates
+		final Set<String> keys = new HashSet<String>();
+		for (final StubReceiver.Accepted a : accepted) {
+			assertTrue(keys.add(a.idempotencyKey), "duplicated Idempotency-Key: " + a.idempotencyKey);
+			assertEquals(a.params.get("incarnation") + "-" + a.params.get("seq"), a.idempotencyKey);
+		}
+		// Ordered by sequence inside each context / service
+		final Map<String, Long> lastSeq = new HashMap<String, Long>();
+		for (final StubReceiver.Accepted a : accepted) {
+			final String partition = "C".equals(a.params.get("event")) //
+					? a.params.get("service") + "/" + a.params.get("basename") //
+					: a.params.get("service");
+			final long seq = Long.parseLong(a.params.get("seq"));
+			final Long last = lastSeq.put(partition, seq);
+			assertTrue((last == null) || (last < seq), //
+					"out of order: " + partition + " " + last + " > " + seq);
+		}
+	}
+
+	/**
+	 * Run contexts from pool of threads: deploy (initialized, destroyed, initialized) or undeploy
+	 * (destroyed)
+	 */
+	private void runStorm(final List<ServletContext> contexts,
+			final List<WebAppNotifierContextListener> listeners, final boolean deploy) throws Exception {
+		final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < contexts.size(); i++) {
+				final ServletContextEvent event = new ServletContextEvent(contexts.get(i));
+				final WebAppNotifierContextListener listener = listeners.get(i);
+				futures.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						if (deploy) {
+							listener.contextInitialized(event);
+							listener.contextDestroyed(event);
+							listener.contextInitialized(event);
+						} else {
+							listener.contextDestroyed(event);
+						}
+					}
+				}));
+			}
+			for (final Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void report(final long submitted, final long delivered, final long failed, final long dropped,
+			final List<StubReceiver.Accepted> accepted, final long total, final long drain) {
+		final List<Long> latencies = new ArrayList<Long>();
+		for (final StubReceiver.Accepted a : accepted) {
+			latencies.add(a.latency);
+		}
+		Collections.sort(latencies);
+		System.out.println(DeployStormTest.class.getSimpleName() + ":" + //
+				" contexts=" + CONTEXTS + //
+				" threads=" + THREADS + //
+				" latency=" + LATENCY + "ms" + //
+				" errorRate=" + ERROR_RATE + //
+				" throttleRate=" + THROTTLE_RATE);
+		System.out.println(DeployStormTest.class.getSimpleName() + ":" + //
+				" submitted=" + submitted + //
+				" delivered=" + delivered + //
+				" failed=" + failed + //
+				" dropped=" + dropped + //
+				" requests=" + receiver.getRequests() + //
+				" http500=" + receiver.getErrors() + //
+				" http429=" + receiver.getThrottled());
+		System.out.println(DeployStormTest.class.getSimpleName() + ":" + //
+				" p50=" + percentile(latencies, 50) + "ms" + //
+				" p95=" + percentile(latencies, 95) + "ms" + //
+				" p99=" + percentile(latencies, 99) + "ms" + //
+				" events/s=" + ((delivered * 1000) / Math.max(total, 1)) + //
+				" total=" + total + "ms" + //
+				" drain=" + drain + "ms");
+	}
+
+	private static long percentile(final List<Long> sorted, final int p) {
+		if (sorted.isEmpty()) {
+			return -1;
+		}
+		final int i = (int) Math.ceil((p / 100.0) * sorted.size()) - 1;
+		return sorted.get(Math.max(i, 0));
+	}
+
+	private static ServletContext newServletContext(final String path, final String service) {
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		attributes.put(KEY_CACHE, service);
+		return (ServletContext) Proxy.newProxyInstance(DeployStormTest.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getContextPath":
+							return path;
+						case "getAttribute":
+							return attributes.get(args[0]);
+						case "setAttribute":
+							attributes.put((String) args[0], args[1]);
+							return null;
+						case "removeAttribute":
+							attributes.remove(args[0]);
+							return null;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return (proxy == args[0]);
+						case "toString":
+							return "ServletContext(" + path + ")";
+						default:
+							// log and others
+							return null;
+					}
+				});
+	}
+
+	private static LifecycleEvent newLifecycleEvent(final String type) {
+		final Lifecycle lifecycle = (Lifecycle) Proxy.newProxyInstance(DeployStormTest.class.getClassLoader(),
+				new Class<?>[] { Lifecycle.class }, (proxy, method, args) -> null);
+		return new LifecycleEvent(lifecycle, type, null);
+	}
+
+	private static void register(final MBeanServer mbs, final String name, final String className,
+			final String... keyValues) throws Exception {
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			attributes.put(keyValues[i], keyValues[i + 1]);
+		}
+		final ObjectName objectName = new ObjectName(name);
+		mbs.registerMBean(new FakeMBean(className, attributes), objectName);
+		mbeans.add(objectName);
+	}
+
+	/**
+	 * Read-only MBean with the class name of Tomcat MBeans (used by self discovery)
+	 */
+	private static class FakeMBean implements DynamicMBean {
+		private final String className;
+		private final Map<String, Object> attributes;
+
+		FakeMBean(final String className, final Map<String, Object> attributes) {
+			this.className = className;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+			if (!attributes.containsKey(attribute)) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return attributes.get(attribute);
+		}
+
+		@Override
+		public void setAttribute(final Attribute attribute) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public AttributeList getAttributes(final String[] names) {
+			final AttributeList list = new AttributeList();
+			for (final String name : names) {
+				list.add(new Attribute(name, attributes.get(name)));
+			}
+			return list;
+		}
+
+		@Override
+		public AttributeList setAttributes(final AttributeList list) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			final List<MBeanAttributeInfo> infos = new ArrayList<MBeanAttributeInfo>();
+			for (final String name : attributes.keySet()) {
+				infos.add(new MBeanAttributeInfo(name, String.class.getName(), name, true, false, false));
+			}
+			return new MBeanInfo(className, null, infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.javastack.webappnotifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process notification receiver with configurable latency, error rate (HTTP 500) and throttle rate
+ * (HTTP 429)
+ */
+public class StubReceiver implements HttpHandler {
+	private static final String PATH = "/notifier";
+	private static final String NODELAY_PROP = "sun.net.httpserver.nodelay";
+
+	/**
+	 * Notification accepted by receiver (HTTP 200)
+	 */
+	public static class Accepted {
+		public final String idempotencyKey;
+		public final Map<String, String> params;
+		/**
+		 * Time in millis from "ts" param to reception
+		 */
+		public final long latency;
+
+		Accepted(final String idempotencyKey, final Map<String, String> params, final long latency) {
+			this.idempotencyKey = idempotencyKey;
+			this.params = params;
+			this.latency = latency;
+		}
+	}
+
+	private final int latency;
+	private final double errorRate;
+	private final double throttleRate;
+	private final List<Accepted> accepted = Collections.synchronizedList(new ArrayList<Accepted>());
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+	private String oldNoDelay = null;
+
+	/**
+	 * @param latency delay before response (millis)
+	 * @param errorRate ratio of POST answered with HTTP 500 (0.0 - 1.0)
+	 * @param throttleRate ratio of POST answered with HTTP 429 (0.0 - 1.0)
+	 */
+	public StubReceiver(final int latency, final double errorRate, final double throttleRate) {
+		this.latency = latency;
+		this.errorRate = errorRate;
+		this.throttleRate = throttleRate;
+	}
+
+	public void start() throws IOException {
+		// JDK HttpServer disables TCP_NODELAY by default (~40ms delayed ACK per request)
+		oldNoDelay = System.setProperty(NODELAY_PROP, "true");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newFixedThreadPool(32);
+		server.setExecutor(executor);
+		server.createContext(PATH, this);
+		server.start();
+	}
+
+	public void stop() throws InterruptedException {
+		server.stop(0);
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		if (oldNoDelay == null) {
+			System.clearProperty(NODELAY_PROP);
+		} else {
+			System.setProperty(NODELAY_PROP, oldNoDelay);
+		}
+	}
+
+	public String getURL() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+	}
+
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		try {
+			final byte[] body = readFully(exchange.getRequestBody());
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 200);
+				return;
+			}
+			requests.incrementAndGet();
+			if (latency > 0) {
+				Thread.sleep(latency);
+			}
+			final double dice = ThreadLocalRandom.current().nextDouble();
+			if (dice < errorRate) {
+				errors.incrementAndGet();
+				respond(exchange, 500);
+			} else if (dice < (errorRate + throttleRate)) {
+				throttled.incrementAndGet();
+				respond(exchange, 429);
+			} else {
+				final Map<String, String> params = parse(new String(body, "ISO-8859-1"));
+				final long ts = Long.parseLong(params.get("ts"));
+				accepted.add(new Accepted(exchange.getRequestHeaders().getFirst("Idempotency-Key"), params,
+						System.currentTimeMillis() - ts));
+				respond(exchange, 200);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	public List<Accepted> getAccepted() {
+		synchronized (accepted) {
+			return new ArrayList<Accepted>(accepted);
+		}
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+	/**
+	 * Response with a short body, like a real server (error responses without body are seen by client as
+	 * IOException)
+	 */
+	private static void respond(final HttpExchange exchange, final int code) throws IOException {
+		final byte[] body = ("HTTP " + code + "\n").getBytes("ISO-8859-1");
+		exchange.sendResponseHeaders(code, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private static byte[] readFully(final InputStream is) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[512];
+		int len = 0;
+		while ((len = is.read(buf)) != -1) {
+			out.write(buf, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+	private static Map<String, String> parse(final String body) throws IOException {
+		final Map<String, String> params = new HashMap<String, String>();
+		for (final String kv : body.split("&")) {
+			final int i = kv.indexOf('=');
+			if (i > 0) {
+				// Multi-value params (endpoints) are joined with ","
+				final String k = URLDecoder.decode(kv.substring(0, i), "ISO-8859-1");
+				final String v = URLDecoder.decode(kv.substring(i + 1), "ISO-8859-1");
+				final String old = params.get(k);
+				params.put(k, (old == null ? v : old + "," + v));
+			}
+		}
+		return params;
+	}
+}